@@ -1,63 +1,136 @@
 package org.leishman.license;
 
-import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
-
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.util.Calendar;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
 import java.util.Date;
 
 public class LicenseKeySerialization
 {
-    private static final BASE64Encoder base64Encoder = new BASE64Encoder();
-    private static final BASE64Decoder base64Decoder = new BASE64Decoder();
+    private static final Base64.Decoder base64Decoder = Base64.getDecoder();
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private static final String BEGIN_DELIMITER = "----BEGIN COMMERCIAL LICENSE KEY ";
+    private static final String END_DELIMITER = "----END COMMERCIAL LICENSE KEY ";
+    private static final String DELIMITER_SUFFIX = "----\n";
+
+    private static final byte[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes( StandardCharsets.US_ASCII );
+    private static final int BASE64_LINE_LENGTH = 76;
 
     public static String serializeLicenseKey( SignedLicenseKey licenseKey )
     {
-        byte[] detailBytes = serializeLicenseKeyDetails( licenseKey );
-        byte[] signatureBytes = licenseKey.signature();
+        byte[] identifierBytes = utf8Bytes( licenseKey.getIdentifier() );
+        byte[] nameBytes = utf8Bytes( licenseKey.getLicensedName() );
 
-        byte[] licenseBytes = new byte[1 + 2 + detailBytes.length + signatureBytes.length];
-        ByteBuffer licenseBuffer = ByteBuffer.wrap( licenseBytes );
-        licenseBuffer.put( (byte) 0 );
-        licenseBuffer.putShort( (short) detailBytes.length );
-        licenseBuffer.put( detailBytes );
-        licenseBuffer.put( signatureBytes );
+        byte[] licenseBytes = new byte[licenseLength( identifierBytes, nameBytes, licenseKey )];
+        putLicense( ByteBuffer.wrap( licenseBytes ), identifierBytes, nameBytes, licenseKey );
 
-        String encodedLicense = base64Encoder.encodeBuffer( licenseBytes );
+        byte[] encodedBytes = new byte[maxEncodedLength( licenseBytes.length )];
+        int encodedLength = encodeBase64( licenseBytes, licenseBytes.length, encodedBytes );
 
-        return String.format("----BEGIN COMMERCIAL LICENSE KEY %s----\n%s----END COMMERCIAL LICENSE KEY %s----\n",
-                licenseKey.getIdentifier(), encodedLicense, licenseKey.getIdentifier());
+        String identifier = licenseKey.getIdentifier();
+        StringBuilder builder = new StringBuilder( BEGIN_DELIMITER.length() + END_DELIMITER.length() +
+                2 * ( identifier.length() + DELIMITER_SUFFIX.length() ) + encodedLength );
+        builder.append( BEGIN_DELIMITER ).append( identifier ).append( DELIMITER_SUFFIX );
+        for ( int i = 0; i < encodedLength; i++ )
+        {
+            builder.append( (char) encodedBytes[i] );
+        }
+        builder.append( END_DELIMITER ).append( identifier ).append( DELIMITER_SUFFIX );
+        return builder.toString();
     }
 
-    public static byte[] serializeLicenseKeyDetails( LicenseKey licenseKey )
+    /**
+     * Serialize many license keys, one after the other, to the given output. Encoding buffers are reused across
+     * the whole batch, so this is considerably cheaper than calling {@link #serializeLicenseKey} for each key.
+     */
+    public static void serializeLicenseKeys( Iterable<? extends SignedLicenseKey> licenseKeys, Appendable out )
+            throws IOException
     {
-        byte[] identifierBytes;
-        byte[] nameBytes;
-
-        try
+        LicenseKeyEncoder encoder = new LicenseKeyEncoder();
+        for ( SignedLicenseKey licenseKey : licenseKeys )
         {
-            identifierBytes = licenseKey.getIdentifier().getBytes( "UTF-8" );
-            nameBytes = licenseKey.getLicensedName().getBytes( "UTF-8" );
-        } catch ( UnsupportedEncodingException e )
+            encoder.encode( licenseKey );
+            out.append( BEGIN_DELIMITER ).append( licenseKey.getIdentifier() ).append( DELIMITER_SUFFIX );
+            encoder.appendEncoded( out );
+            out.append( END_DELIMITER ).append( licenseKey.getIdentifier() ).append( DELIMITER_SUFFIX );
+        }
+    }
+
+    /**
+     * Serialize many license keys, one after the other, to the given channel. Keys are accumulated in a reusable
+     * buffer and written to the channel in large blocks.
+     */
+    public static void serializeLicenseKeys( Iterable<? extends SignedLicenseKey> licenseKeys, WritableByteChannel out )
+            throws IOException
+    {
+        LicenseKeyEncoder encoder = new LicenseKeyEncoder();
+        for ( SignedLicenseKey licenseKey : licenseKeys )
         {
-            throw new IllegalStateException( "UTF-8 encoding not supported by JVM", e );
+            encoder.encode( licenseKey );
+            encoder.writeRecord( out );
         }
+        encoder.flush( out );
+    }
+
+    public static byte[] serializeLicenseKeyDetails( LicenseKey licenseKey )
+    {
+        byte[] identifierBytes = utf8Bytes( licenseKey.getIdentifier() );
+        byte[] nameBytes = utf8Bytes( licenseKey.getLicensedName() );
 
-        byte[] bytes = new byte[identifierBytes.length + 1 + nameBytes.length + 1 + 3 + 3];
+        byte[] bytes = new byte[detailLength( identifierBytes, nameBytes )];
         ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        putDetails( buffer, identifierBytes, nameBytes, licenseKey );
+
+        return bytes;
+    }
+
+    private static int detailLength( byte[] identifierBytes, byte[] nameBytes )
+    {
+        return identifierBytes.length + 1 + nameBytes.length + 1 + 3 + 3;
+    }
 
+    private static int licenseLength( byte[] identifierBytes, byte[] nameBytes, SignedLicenseKey licenseKey )
+    {
+        return 1 + 2 + detailLength( identifierBytes, nameBytes ) + licenseKey.signature().length;
+    }
+
+    private static void putLicense( ByteBuffer buffer, byte[] identifierBytes, byte[] nameBytes,
+            SignedLicenseKey licenseKey )
+    {
+        buffer.put( (byte) 0 );
+        buffer.putShort( (short) detailLength( identifierBytes, nameBytes ) );
+        putDetails( buffer, identifierBytes, nameBytes, licenseKey );
+        buffer.put( licenseKey.signature() );
+    }
+
+    private static void putDetails( ByteBuffer buffer, byte[] identifierBytes, byte[] nameBytes, LicenseKey licenseKey )
+    {
         buffer.put( identifierBytes );
         buffer.put( (byte) 0 );
         buffer.put( nameBytes );
         buffer.put( (byte) 0 );
         putDate( buffer, licenseKey.getIssueDate() );
         putDate( buffer, licenseKey.getExpiryDate() );
+    }
 
-        return bytes;
+    private static byte[] utf8Bytes( String value )
+    {
+        try
+        {
+            return value.getBytes( "UTF-8" );
+        } catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 encoding not supported by JVM", e );
+        }
     }
 
     public static SignedLicenseKey deserializeLicenseKey( String licenseText )
@@ -67,11 +140,10 @@ public class LicenseKeySerialization
         byte[] licenseBytes;
         try
         {
-            licenseBytes = base64Decoder.decodeBuffer( encodedLicense );
-        } catch ( IOException e )
+            licenseBytes = base64Decoder.decode( encodedLicense );
+        } catch ( IllegalArgumentException e )
         {
-            // Not reachable
-            throw new RuntimeException( e );
+            return null;
         }
 
         ByteBuffer licenseBuffer = ByteBuffer.wrap( licenseBytes ).asReadOnlyBuffer();
@@ -146,13 +218,15 @@ public class LicenseKeySerialization
         return new SignedLicenseKey( identifier, licensedName, issueDate, expiryDate, signatureBytes );
     }
 
+    /* Dates are packed as a UTC year and day of year. The epoch day arithmetic here is equivalent to using a UTC
+     * Calendar, but avoids loading time zone data.
+     */
     private static void putDate( ByteBuffer buffer, Date date )
     {
-        Calendar calendar = Calendar.getInstance( LicenseKey.TIME_ZONE );
-        calendar.setTime( date );
+        LocalDate utcDate = LocalDate.ofEpochDay( Math.floorDiv( date.getTime(), MILLIS_PER_DAY ) );
 
-        int year = calendar.get( Calendar.YEAR );
-        int dayOfYear = calendar.get( Calendar.DAY_OF_YEAR );
+        int year = utcDate.getYear();
+        int dayOfYear = utcDate.getDayOfYear();
 
         int packedDate = ( ( year & 0x7FFF ) << 9 ) | ( dayOfYear & 0x1FF );
         buffer.put( (byte) ( ( packedDate >> 16 ) & 0xFF ) );
@@ -166,11 +240,8 @@ public class LicenseKeySerialization
         int year = ( packedDate >> 9 ) & 0x7FFF;
         int dayOfYear = packedDate & 0x1FF;
 
-        Calendar calendar = Calendar.getInstance( LicenseKey.TIME_ZONE );
-        calendar.clear();
-        calendar.set( Calendar.YEAR, year );
-        calendar.set( Calendar.DAY_OF_YEAR, dayOfYear );
-        return calendar.getTime();
+        long epochDay = LocalDate.of( year, 1, 1 ).toEpochDay() + dayOfYear - 1;
+        return new Date( epochDay * MILLIS_PER_DAY );
     }
 
     private static byte[] getUntilNull( ByteBuffer buffer )
@@ -198,4 +269,156 @@ public class LicenseKeySerialization
         }
         return -1;
     }
+
+    private static int maxEncodedLength( int length )
+    {
+        int unwrappedLength = ( ( length + 2 ) / 3 ) * 4;
+        return unwrappedLength + ( unwrappedLength + BASE64_LINE_LENGTH - 1 ) / BASE64_LINE_LENGTH;
+    }
+
+    /* Lines are wrapped at 76 characters, and every line (including the last) is newline terminated. */
+    private static int encodeBase64( byte[] source, int length, byte[] target )
+    {
+        int offset = 0;
+        int lineLength = 0;
+        int i = 0;
+        for ( ; i + 3 <= length; i += 3 )
+        {
+            int bits = ( ( source[i] & 0xFF ) << 16 ) | ( ( source[i + 1] & 0xFF ) << 8 ) | ( source[i + 2] & 0xFF );
+            target[offset++] = BASE64_ALPHABET[( bits >>> 18 ) & 0x3F];
+            target[offset++] = BASE64_ALPHABET[( bits >>> 12 ) & 0x3F];
+            target[offset++] = BASE64_ALPHABET[( bits >>> 6 ) & 0x3F];
+            target[offset++] = BASE64_ALPHABET[bits & 0x3F];
+            lineLength += 4;
+            if ( lineLength == BASE64_LINE_LENGTH )
+            {
+                target[offset++] = '\n';
+                lineLength = 0;
+            }
+        }
+
+        int remaining = length - i;
+        if ( remaining > 0 )
+        {
+            int bits = ( source[i] & 0xFF ) << 16;
+            if ( remaining == 2 )
+            {
+                bits |= ( source[i + 1] & 0xFF ) << 8;
+            }
+            target[offset++] = BASE64_ALPHABET[( bits >>> 18 ) & 0x3F];
+            target[offset++] = BASE64_ALPHABET[( bits >>> 12 ) & 0x3F];
+            target[offset++] = remaining == 2 ? BASE64_ALPHABET[( bits >>> 6 ) & 0x3F] : (byte) '=';
+            target[offset++] = '=';
+            lineLength += 4;
+        }
+
+        if ( lineLength > 0 )
+        {
+            target[offset++] = '\n';
+        }
+        return offset;
+    }
+
+    /**
+     * Reusable encoding state for serializing a batch of license keys. Not thread safe.
+     */
+    private static final class LicenseKeyEncoder
+    {
+        private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+        private static final byte[] BEGIN_DELIMITER_BYTES = BEGIN_DELIMITER.getBytes( StandardCharsets.US_ASCII );
+        private static final byte[] END_DELIMITER_BYTES = END_DELIMITER.getBytes( StandardCharsets.US_ASCII );
+        private static final byte[] DELIMITER_SUFFIX_BYTES = DELIMITER_SUFFIX.getBytes( StandardCharsets.US_ASCII );
+
+        private ByteBuffer licenseBuffer = ByteBuffer.allocate( 512 );
+        private byte[] encodedBytes = new byte[1024];
+        private int encodedLength;
+        private char[] encodedChars = new char[1024];
+        private CharBuffer encodedCharBuffer = CharBuffer.wrap( encodedChars );
+        private ByteBuffer outputBuffer;
+        private byte[] identifierBytes;
+
+        void encode( SignedLicenseKey licenseKey )
+        {
+            identifierBytes = utf8Bytes( licenseKey.getIdentifier() );
+            byte[] nameBytes = utf8Bytes( licenseKey.getLicensedName() );
+
+            int licenseLength = licenseLength( identifierBytes, nameBytes, licenseKey );
+            if ( licenseBuffer.capacity() < licenseLength )
+            {
+                licenseBuffer = ByteBuffer.allocate( licenseLength );
+            }
+            licenseBuffer.clear();
+            putLicense( licenseBuffer, identifierBytes, nameBytes, licenseKey );
+
+            int maxEncodedLength = maxEncodedLength( licenseLength );
+            if ( encodedBytes.length < maxEncodedLength )
+            {
+                encodedBytes = new byte[maxEncodedLength];
+            }
+            encodedLength = encodeBase64( licenseBuffer.array(), licenseLength, encodedBytes );
+        }
+
+        /* Writers and string builders take the char array directly. Appendable.append(CharSequence) would copy
+         * through toString() for a Writer, so other Appendables are given a reused CharBuffer over the same array.
+         */
+        void appendEncoded( Appendable out ) throws IOException
+        {
+            if ( encodedChars.length < encodedLength )
+            {
+                encodedChars = new char[encodedBytes.length];
+                encodedCharBuffer = CharBuffer.wrap( encodedChars );
+            }
+            for ( int i = 0; i < encodedLength; i++ )
+            {
+                encodedChars[i] = (char) encodedBytes[i];
+            }
+
+            if ( out instanceof Writer )
+            {
+                ( (Writer) out ).write( encodedChars, 0, encodedLength );
+            } else if ( out instanceof StringBuilder )
+            {
+                ( (StringBuilder) out ).append( encodedChars, 0, encodedLength );
+            } else
+            {
+                out.append( encodedCharBuffer, 0, encodedLength );
+            }
+        }
+        void writeRecord( WritableByteChannel out ) throws IOException
+        {
+            int recordLength = BEGIN_DELIMITER_BYTES.length + END_DELIMITER_BYTES.length +
+                    2 * ( identifierBytes.length + DELIMITER_SUFFIX_BYTES.length ) + encodedLength;
+            if ( outputBuffer == null )
+            {
+                outputBuffer = ByteBuffer.allocate( Math.max( OUTPUT_BUFFER_SIZE, recordLength ) );
+            }
+            if ( outputBuffer.remaining() < recordLength )
+            {
+                flush( out );
+                if ( outputBuffer.capacity() < recordLength )
+                {
+                    outputBuffer = ByteBuffer.allocate( recordLength );
+                }
+            }
+
+            outputBuffer.put( BEGIN_DELIMITER_BYTES ).put( identifierBytes ).put( DELIMITER_SUFFIX_BYTES );
+            outputBuffer.put( encodedBytes, 0, encodedLength );
+            outputBuffer.put( END_DELIMITER_BYTES ).put( identifierBytes ).put( DELIMITER_SUFFIX_BYTES );
+        }
+
+        void flush( WritableByteChannel out ) throws IOException
+        {
+            if ( outputBuffer == null )
+            {
+                return;
+            }
+            outputBuffer.flip();
+            while ( outputBuffer.hasRemaining() )
+            {
+                out.write( outputBuffer );
+            }
+            outputBuffer.clear();
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package org.leishman.license;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LicenseKeySigner
+{
+    /* Key must be a PKCS#8 DER encoded RSA private key, e.g. as generated by:
+     * $ openssl pkcs8 -topk8 -inform pem -outform der -in license-private.pem -out license-private.key -nocrypt
+     * See LicenseKeyVerifier for generating the matching public key. Private keys are deliberately not loaded from
+     * classpath resources, so that they need not be packaged with the application.
+     */
+    private final SignaturePool signaturePool;
+
+    public LicenseKeySigner( Path privateKeyFile )
+    {
+        this( loadPrivateKeyFile( privateKeyFile ) );
+    }
+
+    public LicenseKeySigner( PrivateKey privateKey )
+    {
+        this.signaturePool = new SignaturePool( privateKey );
+    }
+
+    public SignedLicenseKey sign( LicenseKey licenseKey )
+    {
+        Signature signature = signaturePool.acquire();
+        SignedLicenseKey signedLicenseKey = sign( signature, licenseKey );
+        signaturePool.release( signature );
+        return signedLicenseKey;
+    }
+
+    public List<SignedLicenseKey> signAll( Iterable<? extends LicenseKey> licenseKeys )
+    {
+        List<SignedLicenseKey> signedLicenseKeys = new ArrayList<>();
+        Signature signature = signaturePool.acquire();
+        for ( LicenseKey licenseKey : licenseKeys )
+        {
+            signedLicenseKeys.add( sign( signature, licenseKey ) );
+        }
+        signaturePool.release( signature );
+        return signedLicenseKeys;
+    }
+
+    private static SignedLicenseKey sign( Signature signature, LicenseKey licenseKey )
+    {
+        byte[] keyDetailsBytes = LicenseKeySerialization.serializeLicenseKeyDetails( licenseKey );
+
+        byte[] signatureBytes;
+        try
+        {
+            signature.update( keyDetailsBytes, 0, keyDetailsBytes.length );
+            signatureBytes = signature.sign();
+        } catch ( SignatureException e )
+        {
+            throw new IllegalStateException( "Unable to sign license key", e );
+        }
+
+        return new SignedLicenseKey( licenseKey.getIdentifier(), licenseKey.getLicensedName(),
+                licenseKey.getIssueDate(), licenseKey.getExpiryDate(), signatureBytes );
+    }
+
+    private static PrivateKey loadPrivateKeyFile( Path keyFile )
+    {
+        try
+        {
+            return decodePrivateKey( Files.readAllBytes( keyFile ) );
+        } catch ( IOException | InvalidKeySpecException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static PrivateKey decodePrivateKey( byte[] privateKey ) throws InvalidKeySpecException
+    {
+        KeyFactory keyFactory;
+        try
+        {
+            keyFactory = KeyFactory.getInstance( "RSA" );
+        } catch ( NoSuchAlgorithmException e )
+        {
+            // not reachable - JVM does know RSA
+            throw new RuntimeException( e );
+        }
+        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec( privateKey );
+        return keyFactory.generatePrivate( keySpec );
+    }
+}
@@ -3,7 +3,6 @@ package org.leishman.license;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -12,8 +11,12 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SimpleTimeZone;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class LicenseKeyVerifier
 {
@@ -28,10 +31,14 @@ public class LicenseKeyVerifier
      * $ openssl pkcs8 -topk8 -inform pem -outform der -in license-private.pem -out license-private.key -nocrypt
      */
     private static final String PUBLIC_KEY_RESOURCE_NAME = "license-public.key";
-    public static final TimeZone LAST_TIMEZONE = TimeZone.getTimeZone( "GMT-12" );
+    // A fixed offset zone is constructed directly, as looking up a zone by ID loads the time zone database
+    public static final TimeZone LAST_TIMEZONE = new SimpleTimeZone( -12 * 60 * 60 * 1000, "GMT-12:00" );
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
 
     private final Clock clock;
     private final PublicKey publicKey;
+    private final VerificationSnapshot snapshot;
+    private final SignaturePool signaturePool;
 
     public LicenseKeyVerifier()
     {
@@ -40,7 +47,7 @@ public class LicenseKeyVerifier
 
     public LicenseKeyVerifier( String publicKeyFileName )
     {
-        this( () -> System.currentTimeMillis(), publicKeyFileName );
+        this( new SystemClock(), publicKeyFileName );
     }
 
     public LicenseKeyVerifier( Clock clock )
@@ -49,15 +56,40 @@ public class LicenseKeyVerifier
     }
 
     public LicenseKeyVerifier( Clock clock, String publicKeyFileName )
+    {
+        this( clock, publicKeyFileName, null );
+    }
+
+    /**
+     * Create a verifier that trusts signatures recorded in the given snapshot, and records each signature it
+     * successfully verifies. The snapshot is not saved by the verifier.
+     */
+    public LicenseKeyVerifier( Clock clock, String publicKeyFileName, VerificationSnapshot snapshot )
+    {
+        this( clock, loadPublicKeyResource( publicKeyFileName ), snapshot );
+    }
+
+    /**
+     * Create a verifier using an already loaded public key. For short lived processes, the key can be loaded once
+     * ahead of time (e.g. in a class initialized at native-image build time, or stored in a CDS archive heap) so
+     * that neither the key resource nor the RSA {@link KeyFactory} need be loaded at startup.
+     */
+    public LicenseKeyVerifier( Clock clock, PublicKey publicKey )
+    {
+        this( clock, publicKey, null );
+    }
+
+    public LicenseKeyVerifier( Clock clock, PublicKey publicKey, VerificationSnapshot snapshot )
     {
         this.clock = clock;
-        try
-        {
-            this.publicKey = loadPublicKey( publicKeyFileName );
-        } catch ( IOException | InvalidKeySpecException e )
-        {
-            throw new RuntimeException( e );
-        }
+        this.publicKey = publicKey;
+        this.signaturePool = new SignaturePool( publicKey );
+        this.snapshot = snapshot;
+    }
+
+    public PublicKey publicKey()
+    {
+        return publicKey;
     }
 
     public void verifySignature( SignedLicenseKey signedLicenseKey ) throws InvalidLicenseKeyException
@@ -73,15 +105,51 @@ public class LicenseKeyVerifier
         byte[] keyDetailsBytes = LicenseKeySerialization.serializeLicenseKeyDetails( signedLicenseKey );
         byte[] signatureBytes = signedLicenseKey.signature();
 
-        Signature signature = initSignature();
+        if ( snapshot != null && snapshot.contains( publicKey, keyDetailsBytes, signatureBytes ) )
+        {
+            return true;
+        }
+
+        Signature signature = signaturePool.acquire();
+        boolean valid;
         try
         {
             signature.update( keyDetailsBytes, 0, keyDetailsBytes.length );
-            return signature.verify( signatureBytes );
+            valid = signature.verify( signatureBytes );
         } catch ( SignatureException e )
         {
+            // verify() leaves the instance in an unknown state when it throws, so it is not returned to the pool
             return false;
         }
+        signaturePool.release( signature );
+
+        if ( valid && snapshot != null )
+        {
+            snapshot.add( publicKey, keyDetailsBytes, signatureBytes );
+        }
+        return valid;
+    }
+
+    /**
+     * Verify the signatures of the given license keys using the executor, skipping any already recorded in the
+     * snapshot. Keys that are needed before this completes can still be checked with {@link #verifySignature}.
+     *
+     * @return a future of the license keys with invalid signatures
+     */
+    public CompletableFuture<List<SignedLicenseKey>> verifySignaturesInBackground(
+            Iterable<SignedLicenseKey> signedLicenseKeys, Executor executor )
+    {
+        return CompletableFuture.supplyAsync( () -> {
+            List<SignedLicenseKey> invalid = new ArrayList<>();
+            for ( SignedLicenseKey signedLicenseKey : signedLicenseKeys )
+            {
+                if ( !isSignatureValid( signedLicenseKey ) )
+                {
+                    invalid.add( signedLicenseKey );
+                }
+            }
+            return invalid;
+        }, executor );
     }
 
     public void verifyExpiry( LicenseKey licenseKey ) throws InvalidLicenseKeyException
@@ -99,29 +167,35 @@ public class LicenseKeyVerifier
 
     public boolean hasExpired( LicenseKey licenseKey )
     {
-        Calendar now = Calendar.getInstance( LicenseKey.TIME_ZONE );
-        now.setTimeInMillis( clock.currentTimeMillis() );
-
-        Calendar expiryDate = Calendar.getInstance( LicenseKey.TIME_ZONE );
-        expiryDate.setTime( licenseKey.getExpiryDate() );
+        // The start of the (UTC) expiry date in LAST_TIMEZONE. Both zones have fixed offsets, so no Calendar is needed
+        long expiryDay = Math.floorDiv( licenseKey.getExpiryDate().getTime(), MILLIS_PER_DAY );
+        long latestExpiryDate = expiryDay * MILLIS_PER_DAY - LAST_TIMEZONE.getRawOffset();
 
-        Calendar latestExpiryDate = Calendar.getInstance( LAST_TIMEZONE );
-        latestExpiryDate.clear();
-        latestExpiryDate.set( Calendar.YEAR, expiryDate.get( Calendar.YEAR ) );
-        latestExpiryDate.set( Calendar.DAY_OF_YEAR, expiryDate.get( Calendar.DAY_OF_YEAR ) );
-
-        return latestExpiryDate.before( now );
+        return latestExpiryDate < clock.currentTimeMillis();
     }
 
-    private PublicKey loadPublicKey( String keyResourceName ) throws IOException, InvalidKeySpecException
+    private static PublicKey loadPublicKeyResource( String keyResourceName )
     {
-        InputStream stream = ClassLoader.getSystemResourceAsStream( keyResourceName );
-        if ( stream == null )
+        try
         {
-            throw new IllegalArgumentException( "Key file resource not found: " + keyResourceName );
+            return loadPublicKey( keyResourceName );
+        } catch ( IOException | InvalidKeySpecException e )
+        {
+            throw new RuntimeException( e );
         }
+    }
 
-        byte[] publicKey = toByteArray( stream );
+    private static PublicKey loadPublicKey( String keyResourceName ) throws IOException, InvalidKeySpecException
+    {
+        byte[] publicKey;
+        try ( InputStream stream = ClassLoader.getSystemResourceAsStream( keyResourceName ) )
+        {
+            if ( stream == null )
+            {
+                throw new IllegalArgumentException( "Key file resource not found: " + keyResourceName );
+            }
+            publicKey = toByteArray( stream );
+        }
 
         KeyFactory keyFactory;
         try
@@ -151,19 +225,13 @@ public class LicenseKeyVerifier
         return buffer.toByteArray();
     }
 
-    private Signature initSignature()
+    // A class rather than a lambda, so that constructing a default verifier does not bootstrap java.lang.invoke
+    private static final class SystemClock implements Clock
     {
-        try
-        {
-            Signature signature = Signature.getInstance( "SHA1withRSA" );
-            signature.initVerify( publicKey );
-            return signature;
-        } catch ( NoSuchAlgorithmException e )
-        {
-            throw new IllegalStateException( "RSA Algorithm not supported by JVM", e );
-        } catch ( InvalidKeyException e )
+        @Override
+        public long currentTimeMillis()
         {
-            throw new IllegalStateException( "Invalid public key", e );
+            return System.currentTimeMillis();
         }
     }
 }
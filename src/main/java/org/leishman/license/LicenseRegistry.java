@@ -0,0 +1,228 @@
+package org.leishman.license;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A thread safe registry of license keys, indexed by identifier, licensed name and expiry date.
+ *
+ * Keys are held in a {@link ConcurrentHashMap} by identifier, so registering or renewing different licenses never
+ * contends on a shared lock. The secondary indexes are also ConcurrentHashMaps, mapping each licensed name and
+ * expiry date to a concurrent set of keys. A set is only modified inside ConcurrentHashMap.compute for its entry,
+ * which holds that entry's lock. Expiry dates are additionally kept in a sorted set for range lookups, which is
+ * likewise only updated inside compute, when an expiry date's set is created or emptied. Updates to the same
+ * identifier are serialized, and lookups only ever return the key currently registered for an identifier.
+ */
+public class LicenseRegistry
+{
+    private final ConcurrentMap<String,SignedLicenseKey> byIdentifier = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,Set<SignedLicenseKey>> byLicensedName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long,Set<SignedLicenseKey>> byExpiryDate = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> expiryDates = new ConcurrentSkipListSet<>();
+
+    /**
+     * Register a license key, replacing any key already registered with the same identifier.
+     *
+     * @return the previously registered key, or null if there was none
+     */
+    public SignedLicenseKey register( SignedLicenseKey licenseKey )
+    {
+        SignedLicenseKey[] previous = new SignedLicenseKey[1];
+        byIdentifier.compute( licenseKey.getIdentifier(), ( identifier, current ) -> {
+            previous[0] = current;
+            reindex( current, licenseKey );
+            return licenseKey;
+        } );
+        return previous[0];
+    }
+
+    /**
+     * Atomically replace a registered license key with its renewal. The renewal must have the same identifier.
+     *
+     * @return true if {@code expected} was registered and has been replaced, false otherwise
+     */
+    public boolean replace( SignedLicenseKey expected, SignedLicenseKey renewal )
+    {
+        if ( !expected.getIdentifier().equals( renewal.getIdentifier() ) )
+        {
+            throw new IllegalArgumentException( "Renewal identifier (" + renewal.getIdentifier() +
+                    ") does not match license key identifier (" + expected.getIdentifier() + ")" );
+        }
+
+        boolean[] replaced = new boolean[1];
+        byIdentifier.computeIfPresent( expected.getIdentifier(), ( identifier, current ) -> {
+            if ( !current.equals( expected ) )
+            {
+                return current;
+            }
+            replaced[0] = true;
+            reindex( current, renewal );
+            return renewal;
+        } );
+        return replaced[0];
+    }
+
+    /**
+     * @return the removed key, or null if no key was registered with the identifier
+     */
+    public SignedLicenseKey remove( String identifier )
+    {
+        SignedLicenseKey[] removed = new SignedLicenseKey[1];
+        byIdentifier.computeIfPresent( identifier, ( id, current ) -> {
+            removed[0] = current;
+            reindex( current, null );
+            return null;
+        } );
+        return removed[0];
+    }
+
+    public SignedLicenseKey getByIdentifier( String identifier )
+    {
+        return byIdentifier.get( identifier );
+    }
+
+    public Collection<SignedLicenseKey> getByLicensedName( String licensedName )
+    {
+        Set<SignedLicenseKey> licenseKeys = byLicensedName.get( licensedName );
+        if ( licenseKeys == null )
+        {
+            return Collections.emptyList();
+        }
+        return currentlyRegistered( licenseKeys, new ArrayList<>( licenseKeys.size() ) );
+    }
+
+    /**
+     * @return all keys expiring on or after {@code from}, and before {@code to}
+     */
+    public Collection<SignedLicenseKey> getByExpiryDate( Date from, Date to )
+    {
+        List<SignedLicenseKey> result = new ArrayList<>();
+        for ( Long expiryDate : expiryDates.subSet( from.getTime(), to.getTime() ) )
+        {
+            Set<SignedLicenseKey> licenseKeys = byExpiryDate.get( expiryDate );
+            if ( licenseKeys != null )
+            {
+                currentlyRegistered( licenseKeys, result );
+            }
+        }
+        return result;
+    }
+
+    public Collection<SignedLicenseKey> getAll()
+    {
+        return Collections.unmodifiableCollection( byIdentifier.values() );
+    }
+
+    public int size()
+    {
+        return byIdentifier.size();
+    }
+
+    /**
+     * The number of entries in each secondary index, including any not visible through lookups. For testing.
+     */
+    int[] indexedCounts()
+    {
+        return new int[]{count( byLicensedName ), count( byExpiryDate )};
+    }
+
+    private static int count( ConcurrentMap<?,Set<SignedLicenseKey>> index )
+    {
+        int count = 0;
+        for ( Set<SignedLicenseKey> licenseKeys : index.values() )
+        {
+            count += licenseKeys.size();
+        }
+        return count;
+    }
+
+    /* Indexes are updated while the identifier mapping is locked, just before the new key is published. Filtering
+     * index entries against the identifier map hides entries that are not yet (or no longer) visible, so a key that
+     * is being replaced may briefly be missing from secondary lookups, but a stale key is never returned.
+     */
+    private List<SignedLicenseKey> currentlyRegistered( Set<SignedLicenseKey> licenseKeys, List<SignedLicenseKey> result )
+    {
+        for ( SignedLicenseKey licenseKey : licenseKeys )
+        {
+            if ( licenseKey.equals( byIdentifier.get( licenseKey.getIdentifier() ) ) )
+            {
+                result.add( licenseKey );
+            }
+        }
+        return result;
+    }
+
+    private void reindex( SignedLicenseKey current, SignedLicenseKey replacement )
+    {
+        if ( current != null && current.equals( replacement ) )
+        {
+            return;
+        }
+        if ( replacement != null )
+        {
+            addToIndexes( replacement );
+        }
+        if ( current != null )
+        {
+            removeFromIndexes( current );
+        }
+    }
+
+    private void addToIndexes( SignedLicenseKey licenseKey )
+    {
+        addToIndex( byLicensedName, null, licenseKey.getLicensedName(), licenseKey );
+        addToIndex( byExpiryDate, expiryDates, licenseKey.getExpiryDate().getTime(), licenseKey );
+    }
+
+    private void removeFromIndexes( SignedLicenseKey licenseKey )
+    {
+        removeFromIndex( byLicensedName, null, licenseKey.getLicensedName(), licenseKey );
+        removeFromIndex( byExpiryDate, expiryDates, licenseKey.getExpiryDate().getTime(), licenseKey );
+    }
+
+    /* The index must be a ConcurrentHashMap: its compute runs the function under the entry's lock, so the bucket
+     * can safely be modified in place. Other concurrent maps (e.g. ConcurrentSkipListMap) may run the function
+     * concurrently and apply its result later, losing updates to a shared bucket.
+     */
+    private static <K> void addToIndex( ConcurrentHashMap<K,Set<SignedLicenseKey>> index, Set<K> sortedKeys, K key,
+            SignedLicenseKey licenseKey )
+    {
+        index.compute( key, ( k, licenseKeys ) -> {
+            Set<SignedLicenseKey> bucket = licenseKeys;
+            if ( bucket == null )
+            {
+                bucket = ConcurrentHashMap.newKeySet();
+                if ( sortedKeys != null )
+                {
+                    sortedKeys.add( k );
+                }
+            }
+            bucket.add( licenseKey );
+            return bucket;
+        } );
+    }
+
+    private static <K> void removeFromIndex( ConcurrentHashMap<K,Set<SignedLicenseKey>> index, Set<K> sortedKeys,
+            K key, SignedLicenseKey licenseKey )
+    {
+        index.computeIfPresent( key, ( k, licenseKeys ) -> {
+            licenseKeys.remove( licenseKey );
+            if ( !licenseKeys.isEmpty() )
+            {
+                return licenseKeys;
+            }
+            if ( sortedKeys != null )
+            {
+                sortedKeys.remove( k );
+            }
+            return null;
+        } );
+    }
+}
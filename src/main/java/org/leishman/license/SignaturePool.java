@@ -0,0 +1,67 @@
+package org.leishman.license;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Signature instances are not thread safe, and are costly to look up and initialize, so initialized instances are
+ * pooled for reuse between callers. An instance must only be released once it is back in its initialized state.
+ */
+final class SignaturePool
+{
+    private static final String ALGORITHM = "SHA1withRSA";
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final Queue<Signature> pool = new ConcurrentLinkedQueue<>();
+
+    SignaturePool( PrivateKey privateKey )
+    {
+        this.privateKey = privateKey;
+        this.publicKey = null;
+    }
+
+    SignaturePool( PublicKey publicKey )
+    {
+        this.privateKey = null;
+        this.publicKey = publicKey;
+    }
+
+    Signature acquire()
+    {
+        Signature signature = pool.poll();
+        return signature != null ? signature : newSignature();
+    }
+
+    void release( Signature signature )
+    {
+        pool.offer( signature );
+    }
+
+    private Signature newSignature()
+    {
+        try
+        {
+            Signature signature = Signature.getInstance( ALGORITHM );
+            if ( privateKey != null )
+            {
+                signature.initSign( privateKey );
+            } else
+            {
+                signature.initVerify( publicKey );
+            }
+            return signature;
+        } catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "RSA Algorithm not supported by JVM", e );
+        } catch ( InvalidKeyException e )
+        {
+            throw new IllegalStateException( privateKey != null ? "Invalid private key" : "Invalid public key", e );
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.leishman.license;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A record of license keys whose signatures have already been verified, which can be persisted to a local file so
+ * that a restarted process does not have to verify them again.
+ *
+ * Entries are keyed by a SHA-256 fingerprint of the public key and a SHA-256 digest of the length-prefixed license
+ * details and the signature. The file is authenticated with an HMAC-SHA256 using a secret supplied by the caller;
+ * a file that fails authentication is ignored, and all keys are then verified as normal.
+ */
+public class VerificationSnapshot
+{
+    private static final int MAGIC = 0x4C4B5653; // "LKVS"
+    private static final byte VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int ENTRY_LENGTH = 2 * DIGEST_LENGTH;
+    private static final int HEADER_LENGTH = 4 + 1 + 4;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final Path file;
+    private final SecretKeySpec macKey;
+    private final Set<ByteBuffer> entries = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<PublicKey,byte[]> fingerprints = new ConcurrentHashMap<>();
+
+    private VerificationSnapshot( Path file, byte[] macSecret )
+    {
+        this.file = file;
+        this.macKey = new SecretKeySpec( macSecret, MAC_ALGORITHM );
+    }
+
+    /**
+     * Load a snapshot from the given file. If the file does not exist, or cannot be authenticated with the given
+     * secret, an empty snapshot is returned which will be written to the same file when saved.
+     */
+    public static VerificationSnapshot load( Path file, byte[] macSecret ) throws IOException
+    {
+        VerificationSnapshot snapshot = new VerificationSnapshot( file, macSecret );
+
+        byte[] bytes;
+        try
+        {
+            bytes = Files.readAllBytes( file );
+        } catch ( NoSuchFileException e )
+        {
+            return snapshot;
+        }
+
+        snapshot.readEntries( bytes );
+        return snapshot;
+    }
+
+    public boolean contains( PublicKey publicKey, SignedLicenseKey licenseKey )
+    {
+        return contains( publicKey, LicenseKeySerialization.serializeLicenseKeyDetails( licenseKey ),
+                licenseKey.signature() );
+    }
+
+    /**
+     * Record that the signature on a license key has been verified with the given public key.
+     */
+    public void add( PublicKey publicKey, SignedLicenseKey licenseKey )
+    {
+        add( publicKey, LicenseKeySerialization.serializeLicenseKeyDetails( licenseKey ), licenseKey.signature() );
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Write the snapshot to its file. The file is replaced atomically, so a concurrent or interrupted save never
+     * leaves a partially written snapshot behind.
+     */
+    public void save() throws IOException
+    {
+        ByteBuffer[] snapshotEntries = entries.toArray( new ByteBuffer[0] );
+        ByteBuffer buffer = ByteBuffer.allocate( HEADER_LENGTH + snapshotEntries.length * ENTRY_LENGTH + DIGEST_LENGTH );
+        buffer.putInt( MAGIC );
+        buffer.put( VERSION );
+        buffer.putInt( snapshotEntries.length );
+        for ( ByteBuffer entry : snapshotEntries )
+        {
+            buffer.put( entry.duplicate() );
+        }
+        buffer.put( mac( buffer.array(), buffer.position() ) );
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile( directory, file.getFileName().toString(), ".tmp" );
+        try
+        {
+            Files.write( tempFile, buffer.array() );
+            Files.move( tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } finally
+        {
+            Files.deleteIfExists( tempFile );
+        }
+    }
+
+    boolean contains( PublicKey publicKey, byte[] keyDetailsBytes, byte[] signatureBytes )
+    {
+        return entries.contains( entry( publicKey, keyDetailsBytes, signatureBytes ) );
+    }
+
+    void add( PublicKey publicKey, byte[] keyDetailsBytes, byte[] signatureBytes )
+    {
+        entries.add( entry( publicKey, keyDetailsBytes, signatureBytes ) );
+    }
+
+    private void readEntries( byte[] bytes )
+    {
+        if ( bytes.length < HEADER_LENGTH + DIGEST_LENGTH )
+        {
+            return;
+        }
+        int macOffset = bytes.length - DIGEST_LENGTH;
+        byte[] expectedMac = Arrays.copyOfRange( bytes, macOffset, bytes.length );
+        if ( !MessageDigest.isEqual( expectedMac, mac( bytes, macOffset ) ) )
+        {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap( bytes, 0, macOffset ).asReadOnlyBuffer();
+        try
+        {
+            if ( buffer.getInt() != MAGIC || buffer.get() != VERSION )
+            {
+                return;
+            }
+            int count = buffer.getInt();
+            if ( count < 0 || buffer.remaining() != count * ENTRY_LENGTH )
+            {
+                return;
+            }
+            for ( int i = 0; i < count; i++ )
+            {
+                byte[] entry = new byte[ENTRY_LENGTH];
+                buffer.get( entry );
+                entries.add( ByteBuffer.wrap( entry ) );
+            }
+        } catch ( BufferUnderflowException e )
+        {
+            entries.clear();
+        }
+    }
+
+    private ByteBuffer entry( PublicKey publicKey, byte[] keyDetailsBytes, byte[] signatureBytes )
+    {
+        byte[] fingerprint = fingerprints.computeIfAbsent( publicKey, key -> sha256().digest( key.getEncoded() ) );
+
+        // Prefixed with the details length, so moving the boundary between details and signature changes the digest
+        MessageDigest digest = sha256();
+        digest.update( ByteBuffer.allocate( 4 ).putInt( keyDetailsBytes.length ).array() );
+        digest.update( keyDetailsBytes );
+        digest.update( signatureBytes );
+
+        byte[] entry = new byte[ENTRY_LENGTH];
+        System.arraycopy( fingerprint, 0, entry, 0, DIGEST_LENGTH );
+        System.arraycopy( digest.digest(), 0, entry, DIGEST_LENGTH, DIGEST_LENGTH );
+        return ByteBuffer.wrap( entry );
+    }
+
+    private byte[] mac( byte[] bytes, int length )
+    {
+        try
+        {
+            Mac mac = Mac.getInstance( MAC_ALGORITHM );
+            mac.init( macKey );
+            mac.update( bytes, 0, length );
+            return mac.doFinal();
+        } catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "HmacSHA256 Algorithm not supported by JVM", e );
+        } catch ( InvalidKeyException e )
+        {
+            throw new IllegalStateException( "Invalid snapshot secret", e );
+        }
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 Algorithm not supported by JVM", e );
+        }
+    }
+}
@@ -2,8 +2,16 @@ package org.leishman.license;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.*;
@@ -32,6 +40,96 @@ public class LicenseKeySerializationTest
         ) );
     }
 
+    @Test
+    public void testBulkLicenseKeySerialization() throws Exception
+    {
+        // GIVEN
+        List<SignedLicenseKey> licenseKeys = bulkLicenseKeys();
+        StringBuilder expected = new StringBuilder();
+        for ( SignedLicenseKey licenseKey : licenseKeys )
+        {
+            expected.append( mimeEncodedLicenseKey( licenseKey ) );
+        }
+
+        // WHEN
+        StringBuilder keyText = new StringBuilder();
+        LicenseKeySerialization.serializeLicenseKeys( licenseKeys, keyText );
+
+        // THEN
+        assertThat( keyText.toString(), is( expected.toString() ) );
+    }
+
+    @Test
+    public void testBulkLicenseKeySerializationToWriter() throws Exception
+    {
+        // GIVEN
+        List<SignedLicenseKey> licenseKeys = bulkLicenseKeys();
+        StringBuilder expected = new StringBuilder();
+        for ( SignedLicenseKey licenseKey : licenseKeys )
+        {
+            expected.append( mimeEncodedLicenseKey( licenseKey ) );
+        }
+
+        // WHEN
+        StringWriter keyText = new StringWriter();
+        LicenseKeySerialization.serializeLicenseKeys( licenseKeys, keyText );
+
+        // THEN
+        assertThat( keyText.toString(), is( expected.toString() ) );
+    }
+
+    @Test
+    public void testBulkLicenseKeySerializationRoundTrip() throws Exception
+    {
+        // GIVEN
+        List<SignedLicenseKey> licenseKeys = bulkLicenseKeys();
+
+        // WHEN
+        StringBuilder keyText = new StringBuilder();
+        LicenseKeySerialization.serializeLicenseKeys( licenseKeys, keyText );
+
+        // THEN
+        String[] keyTexts = keyText.toString().split( "(?=----BEGIN)" );
+        assertThat( keyTexts.length, is( licenseKeys.size() ) );
+        for ( int i = 0; i < licenseKeys.size(); i++ )
+        {
+            assertThat( LicenseKeySerialization.deserializeLicenseKey( keyTexts[i] ), equalTo( licenseKeys.get( i ) ) );
+        }
+    }
+
+    @Test
+    public void testBulkLicenseKeySerializationToChannel() throws Exception
+    {
+        // GIVEN
+        List<SignedLicenseKey> licenseKeys = bulkLicenseKeys();
+        StringBuilder expected = new StringBuilder();
+        LicenseKeySerialization.serializeLicenseKeys( licenseKeys, expected );
+
+        // WHEN
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try ( WritableByteChannel channel = Channels.newChannel( output ) )
+        {
+            LicenseKeySerialization.serializeLicenseKeys( licenseKeys, channel );
+        }
+
+        // THEN
+        assertThat( output.toString( "UTF-8" ), is( expected.toString() ) );
+    }
+
+    @Test
+    public void testLicenseKeySerializationWrapsLongLines() throws Exception
+    {
+        // GIVEN
+        SignedLicenseKey licenseKey =
+                LicenseKeySerialization.deserializeLicenseKey( LicenseKeyVerifierTest.validTestLicenseKeyText );
+
+        // WHEN
+        String keyText = LicenseKeySerialization.serializeLicenseKey( licenseKey );
+
+        // THEN
+        assertThat( keyText, is( LicenseKeyVerifierTest.validTestLicenseKeyText ) );
+    }
+
     @Test
     public void testLicenseKeyDeserialize() throws Exception
     {
@@ -113,4 +211,36 @@ public class LicenseKeySerializationTest
         // THEN
         assertThat( licenseKey, is( nullValue() ) );
     }
+
+    private static List<SignedLicenseKey> bulkLicenseKeys() throws Exception
+    {
+        SimpleDateFormat dateParser = new SimpleDateFormat( "yyyy-MM-dd ZZZZZ" );
+        Date issueDate = dateParser.parse( "2014-01-01 +0000" );
+        Date expiryDate = dateParser.parse( "2015-07-23 +0000" );
+
+        List<SignedLicenseKey> licenseKeys = new ArrayList<>();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            byte[] signature = new byte[1 + i % 300];
+            for ( int j = 0; j < signature.length; j++ )
+            {
+                signature[j] = (byte) ( i + j );
+            }
+            licenseKeys.add( new SignedLicenseKey( String.format( "01-23-%04d", i ), "Licensee \u00e9 " + i,
+                    issueDate, expiryDate, signature ) );
+        }
+        return licenseKeys;
+    }
+
+    // Independent of LicenseKeySerialization's own base64 encoder
+    private static String mimeEncodedLicenseKey( SignedLicenseKey licenseKey )
+    {
+        byte[] detailBytes = LicenseKeySerialization.serializeLicenseKeyDetails( licenseKey );
+        ByteBuffer licenseBuffer = ByteBuffer.allocate( 1 + 2 + detailBytes.length + licenseKey.signature().length );
+        licenseBuffer.put( (byte) 0 ).putShort( (short) detailBytes.length ).put( detailBytes ).put( licenseKey.signature() );
+        String encoded = Base64.getMimeEncoder( 76, "\n".getBytes() ).encodeToString( licenseBuffer.array() );
+
+        return "----BEGIN COMMERCIAL LICENSE KEY " + licenseKey.getIdentifier() + "----\n" + encoded + "\n" +
+                "----END COMMERCIAL LICENSE KEY " + licenseKey.getIdentifier() + "----\n";
+    }
 }
@@ -0,0 +1,85 @@
+package org.leishman.license;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LicenseKeySignerTest
+{
+    private final SignedLicenseKey validTestLicenseKey =
+            LicenseKeySerialization.deserializeLicenseKey( LicenseKeyVerifierTest.validTestLicenseKeyText );
+
+    @Test
+    public void shouldSignLicense() throws Throwable
+    {
+        // Given
+        LicenseKeySigner licenseKeySigner = new LicenseKeySigner( privateKeyFile() );
+
+        // When
+        SignedLicenseKey licenseKey = licenseKeySigner.sign( validTestLicenseKey );
+
+        // Then
+        assertThat( licenseKey, equalTo( validTestLicenseKey ) );
+        assertThat( LicenseKeySerialization.serializeLicenseKey( licenseKey ),
+                equalTo( LicenseKeyVerifierTest.validTestLicenseKeyText ) );
+    }
+
+    @Test
+    public void shouldSignLicensesVerifiableWithPublicKey() throws Throwable
+    {
+        // Given
+        SimpleDateFormat dateParser = new SimpleDateFormat( "yyyy-MM-dd ZZZZZ" );
+        SignedLicenseKey unsignedKey1 = new SignedLicenseKey( "01-23-0001", "First Licensee",
+                dateParser.parse( "2014-01-01 +0000" ), dateParser.parse( "2015-07-23 +0000" ), new byte[0] );
+        SignedLicenseKey unsignedKey2 = new SignedLicenseKey( "01-23-0002", "Second Licensee",
+                dateParser.parse( "2014-02-01 +0000" ), dateParser.parse( "2016-07-23 +0000" ), new byte[0] );
+
+        LicenseKeySigner licenseKeySigner = new LicenseKeySigner( privateKeyFile() );
+        LicenseKeyVerifier licenseKeyVerifier = new LicenseKeyVerifier(
+                () -> unsignedKey1.getIssueDate().getTime(),
+                "license-public-test.key" );
+
+        // When
+        List<SignedLicenseKey> licenseKeys = licenseKeySigner.signAll( Arrays.asList( unsignedKey1, unsignedKey2 ) );
+
+        // Then
+        assertThat( licenseKeys.size(), is( 2 ) );
+        assertThat( licenseKeys.get( 0 ).getIdentifier(), equalTo( "01-23-0001" ) );
+        assertThat( licenseKeys.get( 1 ).getIdentifier(), equalTo( "01-23-0002" ) );
+        for ( SignedLicenseKey licenseKey : licenseKeys )
+        {
+            assertThat( licenseKeyVerifier.isSignatureValid( licenseKey ), is( true ) );
+        }
+    }
+
+    @Test
+    public void shouldSignWithPreloadedKey() throws Throwable
+    {
+        // Given
+        PrivateKey privateKey = KeyFactory.getInstance( "RSA" ).generatePrivate(
+                new PKCS8EncodedKeySpec( Files.readAllBytes( privateKeyFile() ) ) );
+        LicenseKeySigner licenseKeySigner = new LicenseKeySigner( privateKey );
+
+        // When
+        SignedLicenseKey licenseKey = licenseKeySigner.sign( validTestLicenseKey );
+
+        // Then
+        assertThat( licenseKey, equalTo( validTestLicenseKey ) );
+    }
+
+    private static Path privateKeyFile() throws Exception
+    {
+        return Paths.get( ClassLoader.getSystemResource( "license-private-test.key" ).toURI() );
+    }
+}
@@ -0,0 +1,95 @@
+package org.leishman.license;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start benchmarks for {@link LicenseKeyVerifier}: each fork measures a single deserialize, verify and expiry
+ * check in a fresh JVM, so the measurement includes loading the license and JCA classes and initializing the RSA
+ * provider. Nothing touches those before {@link #verifyWithKeyResource} runs. Run from the command line after
+ * {@code mvn test-compile}:
+ * <pre>
+ * $ mvn dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+ * $ java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main LicenseKeyVerifierStartupBenchmark
+ * </pre>
+ * To measure with an AppCDS archive, first create one with a training run of the application (JDK 13+), e.g.
+ * {@code -XX:ArchiveClassesAtExit=license.jsa}, then pass {@code -jvmArgsAppend -XX:SharedArchiveFile=license.jsa}.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 0 )
+@Measurement( iterations = 1 )
+@Fork( 20 )
+public class LicenseKeyVerifierStartupBenchmark
+{
+    /**
+     * Stands in for a key decoded at native-image build time, or restored from a CDS archive heap: the key is
+     * decoded from its {@code getEncoded()} bytes before measurement, so the KeyFactory and RSA provider are
+     * already initialized. Only {@link #verifyWithPreloadedKey} uses this state.
+     */
+    @State( Scope.Benchmark )
+    public static class PreloadedKey
+    {
+        PublicKey publicKey;
+
+        @Setup
+        public void setup() throws Exception
+        {
+            byte[] encodedKey = Files.readAllBytes(
+                    Paths.get( ClassLoader.getSystemResource( "license-public-test.key" ).toURI() ) );
+            publicKey = KeyFactory.getInstance( "RSA" ).generatePublic( new X509EncodedKeySpec( encodedKey ) );
+        }
+    }
+
+    @Benchmark
+    public boolean verifyWithKeyResource()
+    {
+        return verify( new LicenseKeyVerifier( "license-public-test.key" ) );
+    }
+
+    @Benchmark
+    public boolean verifyWithPreloadedKey( PreloadedKey preloadedKey )
+    {
+        // Not a lambda, which would bootstrap java.lang.invoke during the measurement
+        Clock clock = new Clock()
+        {
+            @Override
+            public long currentTimeMillis()
+            {
+                return System.currentTimeMillis();
+            }
+        };
+        return verify( new LicenseKeyVerifier( clock, preloadedKey.publicKey ) );
+    }
+
+    private static boolean verify( LicenseKeyVerifier licenseKeyVerifier )
+    {
+        SignedLicenseKey licenseKey =
+                LicenseKeySerialization.deserializeLicenseKey( LicenseKeyVerifierTest.validTestLicenseKeyText );
+        return licenseKeyVerifier.isSignatureValid( licenseKey ) && licenseKeyVerifier.hasExpired( licenseKey );
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( LicenseKeyVerifierStartupBenchmark.class.getSimpleName() ).build() )
+                .run();
+    }
+}
@@ -2,8 +2,10 @@ package org.leishman.license;
 
 import org.junit.Test;
 
+import java.security.PublicKey;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -93,4 +95,51 @@ public class LicenseKeyVerifierTest
             assertThat( e.getMessage(), equalTo( "Commercial License key (01-23-4567) expired on 2015-07-23" ) );
         }
     }
+
+    @Test
+    public void shouldExpireOnceExpiryDateHasPassedInLastTimezone() throws Throwable
+    {
+        // Given
+        long startOfExpiryDateInLastTimezone = validTestLicenseKey.getExpiryDate().getTime() + TimeUnit.HOURS.toMillis( 12 );
+        Clock clock = mock( Clock.class );
+        LicenseKeyVerifier licenseKeyVerifier = new LicenseKeyVerifier( clock, "license-public-test.key" );
+
+        // Then
+        when( clock.currentTimeMillis() ).thenReturn( startOfExpiryDateInLastTimezone );
+        assertThat( licenseKeyVerifier.hasExpired( validTestLicenseKey ), is( false ) );
+        when( clock.currentTimeMillis() ).thenReturn( startOfExpiryDateInLastTimezone + 1 );
+        assertThat( licenseKeyVerifier.hasExpired( validTestLicenseKey ), is( true ) );
+    }
+
+    @Test
+    public void shouldReuseSignaturesAfterInvalidLicenses() throws Throwable
+    {
+        // Given
+        PublicKey publicKey = new LicenseKeyVerifier( "license-public-test.key" ).publicKey();
+        LicenseKeyVerifier licenseKeyVerifier = new LicenseKeyVerifier(
+                () -> validTestLicenseKey.getIssueDate().getTime(), publicKey );
+
+        byte[] tamperedSignature = validTestLicenseKey.signature().clone();
+        tamperedSignature[0] ^= 1;
+        SignedLicenseKey tamperedLicenseKey = withSignature( validTestLicenseKey, tamperedSignature );
+        SignedLicenseKey truncatedLicenseKey = withSignature( validTestLicenseKey, new byte[]{1, 2, 3} );
+
+        // When verifying on one thread, so every check after the first reuses the pooled signature
+        boolean[] results = new boolean[]{
+                licenseKeyVerifier.isSignatureValid( validTestLicenseKey ),
+                licenseKeyVerifier.isSignatureValid( tamperedLicenseKey ),
+                licenseKeyVerifier.isSignatureValid( validTestLicenseKey ),
+                licenseKeyVerifier.isSignatureValid( truncatedLicenseKey ),
+                licenseKeyVerifier.isSignatureValid( validTestLicenseKey )
+        };
+
+        // Then
+        assertThat( results, equalTo( new boolean[]{true, false, true, false, true} ) );
+    }
+
+    private static SignedLicenseKey withSignature( SignedLicenseKey licenseKey, byte[] signature )
+    {
+        return new SignedLicenseKey( licenseKey.getIdentifier(), licenseKey.getLicensedName(),
+                licenseKey.getIssueDate(), licenseKey.getExpiryDate(), signature );
+    }
 }
@@ -0,0 +1,122 @@
+package org.leishman.license;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read/write mix benchmarks for {@link LicenseRegistry}. Run from the command line after {@code mvn test-compile}:
+ * <pre>
+ * $ mvn dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+ * $ java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main LicenseRegistryBenchmark
+ * </pre>
+ */
+@State( Scope.Group )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LicenseRegistryBenchmark
+{
+    private static final int LICENSES = 50000;
+    private static final int LICENSEES = 500;
+    private static final long DAY = TimeUnit.DAYS.toMillis( 1 );
+
+    private final LicenseRegistry registry = new LicenseRegistry();
+
+    @Setup
+    public void setup()
+    {
+        for ( int i = 0; i < LICENSES; i++ )
+        {
+            registry.register( licenseKey( i, 0 ) );
+        }
+    }
+
+    @Benchmark
+    @Group( "readMostly" )
+    @GroupThreads( 7 )
+    public SignedLicenseKey readMostlyLookup()
+    {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group( "readMostly" )
+    @GroupThreads( 1 )
+    public boolean readMostlyRenew()
+    {
+        return renew();
+    }
+
+    @Benchmark
+    @Group( "mixed" )
+    @GroupThreads( 4 )
+    public SignedLicenseKey mixedLookup()
+    {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group( "mixed" )
+    @GroupThreads( 2 )
+    public Collection<SignedLicenseKey> mixedLookupByLicensee()
+    {
+        return registry.getByLicensedName( "Licensee " + ThreadLocalRandom.current().nextInt( LICENSEES ) );
+    }
+
+    @Benchmark
+    @Group( "mixed" )
+    @GroupThreads( 2 )
+    public boolean mixedRenew()
+    {
+        return renew();
+    }
+
+    private SignedLicenseKey lookup()
+    {
+        return registry.getByIdentifier( identifier( ThreadLocalRandom.current().nextInt( LICENSES ) ) );
+    }
+
+    private boolean renew()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt( LICENSES );
+        SignedLicenseKey current = registry.getByIdentifier( identifier( i ) );
+        return registry.replace( current, licenseKey( i, random.nextInt( 365 ) ) );
+    }
+
+    private static String identifier( int i )
+    {
+        return "01-23-" + i;
+    }
+
+    private static SignedLicenseKey licenseKey( int i, int renewal )
+    {
+        return new SignedLicenseKey( identifier( i ), "Licensee " + ( i % LICENSEES ), new Date( 0 ),
+                new Date( ( 365 + renewal ) * DAY ), new byte[]{(byte) renewal} );
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( LicenseRegistryBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
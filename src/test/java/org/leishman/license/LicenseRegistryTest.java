@@ -0,0 +1,257 @@
+package org.leishman.license;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LicenseRegistryTest
+{
+    private final SimpleDateFormat dateParser = new SimpleDateFormat( "yyyy-MM-dd ZZZZZ" );
+
+    @Test
+    public void shouldLookupByIdentifierLicensedNameAndExpiry() throws Throwable
+    {
+        // Given
+        LicenseRegistry registry = new LicenseRegistry();
+        SignedLicenseKey key1 = licenseKey( "01-23-0001", "A Test Licensee", "2015-07-23" );
+        SignedLicenseKey key2 = licenseKey( "01-23-0002", "A Test Licensee", "2016-07-23" );
+        SignedLicenseKey key3 = licenseKey( "01-23-0003", "Another Licensee", "2017-07-23" );
+
+        // When
+        registry.register( key1 );
+        registry.register( key2 );
+        registry.register( key3 );
+
+        // Then
+        assertThat( registry.size(), is( 3 ) );
+        assertThat( registry.getByIdentifier( "01-23-0002" ), equalTo( key2 ) );
+        assertThat( registry.getByIdentifier( "01-23-9999" ), is( nullValue() ) );
+        assertContainsOnly( registry.getByLicensedName( "A Test Licensee" ), key1, key2 );
+        assertThat( registry.getByLicensedName( "Unknown" ).isEmpty(), is( true ) );
+        assertContainsOnly( registry.getByExpiryDate( date( "2016-01-01" ), date( "2017-07-23" ) ), key2 );
+        assertContainsOnly( registry.getByExpiryDate( date( "2015-07-23" ), date( "2018-01-01" ) ), key1, key2, key3 );
+    }
+
+    @Test
+    public void shouldReplaceRenewedLicense() throws Throwable
+    {
+        // Given
+        LicenseRegistry registry = new LicenseRegistry();
+        SignedLicenseKey original = licenseKey( "01-23-0001", "A Test Licensee", "2015-07-23" );
+        SignedLicenseKey renewal = licenseKey( "01-23-0001", "A Renamed Licensee", "2016-07-23" );
+        registry.register( original );
+
+        // When
+        boolean replaced = registry.replace( original, renewal );
+
+        // Then
+        assertThat( replaced, is( true ) );
+        assertThat( registry.size(), is( 1 ) );
+        assertThat( registry.getByIdentifier( "01-23-0001" ), equalTo( renewal ) );
+        assertThat( registry.getByLicensedName( "A Test Licensee" ).isEmpty(), is( true ) );
+        assertContainsOnly( registry.getByLicensedName( "A Renamed Licensee" ), renewal );
+        assertThat( registry.getByExpiryDate( date( "2015-01-01" ), date( "2016-01-01" ) ).isEmpty(), is( true ) );
+        assertThat( registry.replace( original, renewal ), is( false ) );
+    }
+
+    @Test
+    public void shouldRejectRenewalWithDifferentIdentifier() throws Throwable
+    {
+        LicenseRegistry registry = new LicenseRegistry();
+        SignedLicenseKey original = licenseKey( "01-23-0001", "A Test Licensee", "2015-07-23" );
+        registry.register( original );
+
+        try
+        {
+            registry.replace( original, licenseKey( "01-23-0002", "A Test Licensee", "2016-07-23" ) );
+            fail( "Expected exception not thrown" );
+        } catch ( IllegalArgumentException e )
+        {
+            assertThat( e.getMessage(), equalTo(
+                    "Renewal identifier (01-23-0002) does not match license key identifier (01-23-0001)" ) );
+        }
+    }
+
+    @Test
+    public void shouldRemoveLicense() throws Throwable
+    {
+        LicenseRegistry registry = new LicenseRegistry();
+        SignedLicenseKey key = licenseKey( "01-23-0001", "A Test Licensee", "2015-07-23" );
+        registry.register( key );
+
+        assertThat( registry.remove( "01-23-0001" ), equalTo( key ) );
+        assertThat( registry.remove( "01-23-0001" ), is( nullValue() ) );
+        assertThat( registry.size(), is( 0 ) );
+        assertThat( registry.getByLicensedName( "A Test Licensee" ).isEmpty(), is( true ) );
+        assertThat( registry.indexedCounts(), equalTo( new int[]{0, 0} ) );
+    }
+
+    @Test
+    public void shouldRemainConsistentUnderConcurrentRenewals() throws Throwable
+    {
+        // Given
+        int identifiers = 64;
+        int writers = 4;
+        int readers = 4;
+        int renewalsPerWriter = 20000;
+        LicenseRegistry registry = new LicenseRegistry();
+        for ( int i = 0; i < identifiers; i++ )
+        {
+            registry.register( renewal( i, 0 ) );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( writers + readers );
+        CountDownLatch start = new CountDownLatch( 1 );
+        CountDownLatch writersDone = new CountDownLatch( writers );
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for ( int w = 0; w < writers; w++ )
+        {
+            futures.add( executor.submit( () -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for ( int n = 0; n < renewalsPerWriter; n++ )
+                {
+                    int i = random.nextInt( identifiers );
+                    SignedLicenseKey current = registry.getByIdentifier( identifier( i ) );
+                    registry.replace( current, renewal( i, random.nextInt( 16 ) ) );
+                }
+                writersDone.countDown();
+                return null;
+            } ) );
+        }
+        for ( int r = 0; r < readers; r++ )
+        {
+            futures.add( executor.submit( () -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while ( writersDone.getCount() > 0 )
+                {
+                    int i = random.nextInt( identifiers );
+                    assertThat( registry.getByIdentifier( identifier( i ) ), is( notNullValue() ) );
+                    String licensee = licensee( random.nextInt( 16 ) );
+                    for ( SignedLicenseKey licenseKey : registry.getByLicensedName( licensee ) )
+                    {
+                        assertThat( licenseKey.getLicensedName(), equalTo( licensee ) );
+                    }
+                    Date expiryDate = expiryDate( random.nextInt( 16 ) );
+                    Date nextDay = new Date( expiryDate.getTime() + TimeUnit.DAYS.toMillis( 1 ) );
+                    for ( SignedLicenseKey licenseKey : registry.getByExpiryDate( expiryDate, nextDay ) )
+                    {
+                        assertThat( licenseKey.getExpiryDate(), equalTo( expiryDate ) );
+                    }
+                }
+                return null;
+            } ) );
+        }
+        start.countDown();
+        for ( Future<?> future : futures )
+        {
+            future.get( 60, TimeUnit.SECONDS );
+        }
+        executor.shutdown();
+
+        // Then every registered key is indexed exactly once, and no stale keys remain indexed
+        assertThat( registry.size(), is( identifiers ) );
+        int[] indexedCounts = registry.indexedCounts();
+        assertThat( indexedCounts[0], is( identifiers ) );
+        assertThat( indexedCounts[1], is( identifiers ) );
+        assertThat( registry.getByExpiryDate( new Date( 0 ), new Date( Long.MAX_VALUE ) ).size(), is( identifiers ) );
+    }
+
+    @Test
+    public void shouldRemainConsistentUnderConcurrentUpdatesToOneExpiryDate() throws Throwable
+    {
+        // Given
+        int threads = 8;
+        int identifiersPerThread = 32;
+        int updatesPerThread = 20000;
+        LicenseRegistry registry = new LicenseRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        CountDownLatch start = new CountDownLatch( 1 );
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When every thread adds and removes its own keys, all expiring on the same date
+        for ( int t = 0; t < threads; t++ )
+        {
+            int first = t * identifiersPerThread;
+            futures.add( executor.submit( () -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for ( int n = 0; n < updatesPerThread; n++ )
+                {
+                    int i = first + random.nextInt( identifiersPerThread );
+                    if ( registry.remove( identifier( i ) ) == null )
+                    {
+                        registry.register( renewal( i, 0 ) );
+                    }
+                }
+                return null;
+            } ) );
+        }
+        start.countDown();
+        for ( Future<?> future : futures )
+        {
+            future.get( 60, TimeUnit.SECONDS );
+        }
+        executor.shutdown();
+
+        // Then
+        int registered = registry.size();
+        assertThat( registry.indexedCounts()[1], is( registered ) );
+        assertThat( registry.getByExpiryDate( new Date( 0 ), new Date( Long.MAX_VALUE ) ).size(), is( registered ) );
+    }
+
+    private static String identifier( int i )
+    {
+        return String.format( "01-23-%04d", i );
+    }
+
+    private static String licensee( int generation )
+    {
+        return "Licensee " + generation;
+    }
+
+    private static Date expiryDate( int generation )
+    {
+        return new Date( TimeUnit.DAYS.toMillis( 365 * ( 1 + generation ) ) );
+    }
+
+    private static SignedLicenseKey renewal( int i, int generation )
+    {
+        return new SignedLicenseKey( identifier( i ), licensee( generation ), new Date( 0 ), expiryDate( generation ),
+                new byte[]{(byte) generation} );
+    }
+
+    private SignedLicenseKey licenseKey( String identifier, String licensedName, String expiryDate ) throws Exception
+    {
+        return new SignedLicenseKey( identifier, licensedName, date( "2014-01-01" ), date( expiryDate ),
+                new byte[]{1, 2, 3} );
+    }
+
+    private Date date( String date ) throws Exception
+    {
+        return dateParser.parse( date + " +0000" );
+    }
+
+    private static void assertContainsOnly( Collection<SignedLicenseKey> actual, SignedLicenseKey... expected )
+    {
+        assertThat( actual.size(), is( expected.length ) );
+        assertThat( actual, hasItems( expected ) );
+    }
+}
@@ -0,0 +1,157 @@
+package org.leishman.license;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class VerificationSnapshotTest
+{
+    private static final byte[] SECRET = "snapshot-test-secret".getBytes();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SignedLicenseKey validTestLicenseKey =
+            LicenseKeySerialization.deserializeLicenseKey( LicenseKeyVerifierTest.validTestLicenseKeyText );
+
+    @Test
+    public void shouldPersistVerifiedLicenses() throws Throwable
+    {
+        // Given
+        Path file = folder.getRoot().toPath().resolve( "verified.snapshot" );
+        VerificationSnapshot snapshot = VerificationSnapshot.load( file, SECRET );
+        LicenseKeyVerifier licenseKeyVerifier = verifier( snapshot );
+
+        // When
+        licenseKeyVerifier.verifySignature( validTestLicenseKey );
+        snapshot.save();
+
+        // Then
+        VerificationSnapshot restored = VerificationSnapshot.load( file, SECRET );
+        assertThat( restored.size(), is( 1 ) );
+        assertThat( restored.contains( licenseKeyVerifier.publicKey(), validTestLicenseKey ), is( true ) );
+    }
+
+    @Test
+    public void shouldNotRecordInvalidSignatures() throws Throwable
+    {
+        // Given
+        VerificationSnapshot snapshot = VerificationSnapshot.load( folder.getRoot().toPath().resolve( "s" ), SECRET );
+        LicenseKeyVerifier licenseKeyVerifier = verifier( snapshot );
+
+        // When
+        boolean valid = licenseKeyVerifier.isSignatureValid( invalidLicenseKey() );
+
+        // Then
+        assertThat( valid, is( false ) );
+        assertThat( snapshot.size(), is( 0 ) );
+    }
+
+    @Test
+    public void shouldTrustLicensesInSnapshot() throws Throwable
+    {
+        // Given
+        Path file = folder.getRoot().toPath().resolve( "verified.snapshot" );
+        SignedLicenseKey licenseKey = invalidLicenseKey();
+        VerificationSnapshot snapshot = VerificationSnapshot.load( file, SECRET );
+        snapshot.add( verifier( null ).publicKey(), licenseKey );
+        snapshot.save();
+
+        // When
+        LicenseKeyVerifier licenseKeyVerifier = verifier( VerificationSnapshot.load( file, SECRET ) );
+
+        // Then
+        assertThat( licenseKeyVerifier.isSignatureValid( licenseKey ), is( true ) );
+    }
+
+    @Test
+    public void shouldIgnoreSnapshotWithInvalidMac() throws Throwable
+    {
+        // Given
+        Path file = folder.getRoot().toPath().resolve( "verified.snapshot" );
+        VerificationSnapshot snapshot = VerificationSnapshot.load( file, SECRET );
+        verifier( snapshot ).verifySignature( validTestLicenseKey );
+        snapshot.save();
+
+        byte[] bytes = Files.readAllBytes( file );
+        bytes[12] ^= 1;
+        Files.write( file, bytes );
+
+        // When
+        VerificationSnapshot tampered = VerificationSnapshot.load( file, SECRET );
+        VerificationSnapshot wrongSecret = VerificationSnapshot.load( file, "another-secret".getBytes() );
+
+        // Then
+        assertThat( tampered.size(), is( 0 ) );
+        assertThat( wrongSecret.size(), is( 0 ) );
+    }
+
+    @Test
+    public void shouldVerifyOnlyUnknownLicensesInBackground() throws Throwable
+    {
+        // Given a snapshot trusting a key that would fail verification
+        VerificationSnapshot snapshot = VerificationSnapshot.load( folder.getRoot().toPath().resolve( "s" ), SECRET );
+        LicenseKeyVerifier licenseKeyVerifier = verifier( snapshot );
+        SignedLicenseKey trustedLicenseKey = invalidLicenseKey( "01-23-0001" );
+        SignedLicenseKey unknownInvalidLicenseKey = invalidLicenseKey( "01-23-0002" );
+        snapshot.add( licenseKeyVerifier.publicKey(), trustedLicenseKey );
+
+        // When
+        List<SignedLicenseKey> invalid = licenseKeyVerifier.verifySignaturesInBackground(
+                Arrays.asList( trustedLicenseKey, validTestLicenseKey, unknownInvalidLicenseKey ), Runnable::run ).get();
+
+        // Then only the unknown keys were verified, and the valid one was recorded
+        assertThat( invalid, equalTo( Arrays.asList( unknownInvalidLicenseKey ) ) );
+        assertThat( snapshot.size(), is( 2 ) );
+        assertThat( snapshot.contains( licenseKeyVerifier.publicKey(), validTestLicenseKey ), is( true ) );
+        assertThat( snapshot.contains( licenseKeyVerifier.publicKey(), unknownInvalidLicenseKey ), is( false ) );
+    }
+
+    @Test
+    public void shouldNotMatchWhenBoundaryBetweenDetailsAndSignatureMoves() throws Throwable
+    {
+        // Given
+        VerificationSnapshot snapshot = VerificationSnapshot.load( folder.getRoot().toPath().resolve( "s" ), SECRET );
+        PublicKey publicKey = verifier( null ).publicKey();
+        byte[] detailBytes = LicenseKeySerialization.serializeLicenseKeyDetails( validTestLicenseKey );
+        byte[] signatureBytes = validTestLicenseKey.signature();
+        snapshot.add( publicKey, detailBytes, signatureBytes );
+
+        // When
+        byte[] shiftedDetailBytes = Arrays.copyOf( detailBytes, detailBytes.length + 1 );
+        shiftedDetailBytes[detailBytes.length] = signatureBytes[0];
+        byte[] shiftedSignatureBytes = Arrays.copyOfRange( signatureBytes, 1, signatureBytes.length );
+
+        // Then
+        assertThat( snapshot.contains( publicKey, detailBytes, signatureBytes ), is( true ) );
+        assertThat( snapshot.contains( publicKey, shiftedDetailBytes, shiftedSignatureBytes ), is( false ) );
+    }
+
+    private LicenseKeyVerifier verifier( VerificationSnapshot snapshot )
+    {
+        return new LicenseKeyVerifier( () -> validTestLicenseKey.getIssueDate().getTime(), "license-public-test.key",
+                snapshot );
+    }
+
+    private static SignedLicenseKey invalidLicenseKey() throws Exception
+    {
+        return invalidLicenseKey( "01-23-4567" );
+    }
+
+    private static SignedLicenseKey invalidLicenseKey( String identifier ) throws Exception
+    {
+        SimpleDateFormat dateParser = new SimpleDateFormat( "yyyy-MM-dd ZZZZZ" );
+        return new SignedLicenseKey( identifier, "A Test Licensee", dateParser.parse( "2014-01-01 +0000" ),
+                dateParser.parse( "2015-07-23 +0000" ), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9} );
+    }
+}